@@ -0,0 +1,118 @@
+package mappings;
+
+import com.github.tomakehurst.wiremock.common.Metadata;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.PostServeAction;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Posts a payout callback once the creation response has been sent, and records every delivery in
+ * {@link PayoutMetrics}: the receiver's HTTP status or a failure, such as a refused connection, and its latency.
+ * This is what the webhooks extension did, minus the outcome it does not expose.
+ * <p>
+ * Deliveries run on a small pool of daemon threads, so neither the request thread nor JVM exit waits for them.
+ */
+public class CallbackSender extends PostServeAction {
+
+    static Logger log = Logger.getLogger(CallbackSender.class.getName());
+
+    public static final String NAME = "payout-callback";
+
+    static final int THREADS = 10;
+    static final int TIMEOUT_MILLIS = 10_000;
+
+    private final PayoutMetrics metrics;
+    private final ExecutorService executor;
+
+    public CallbackSender(PayoutMetrics metrics) {
+        this.metrics = metrics;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "payout-callback-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Parameters of a callback POSTing {@code body} to {@code url} with the given headers.
+     */
+    public static Parameters callback(String url, String body, Map<String, String> headers) {
+        Parameters parameters = new Parameters();
+        parameters.put("url", url);
+        parameters.put("body", body);
+        parameters.put("headers", headers);
+        return parameters;
+    }
+
+    /**
+     * Stops taking deliveries and lets the pool threads end once those already queued are done.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void doAction(ServeEvent serveEvent, Admin admin, Parameters parameters) {
+        String url = parameters.getString("url");
+        byte[] body = parameters.getString("body").getBytes(StandardCharsets.UTF_8);
+        Metadata headers = parameters.getMetadata("headers");
+        executor.execute(() -> deliver(url, body, headers));
+    }
+
+    private void deliver(String url, byte[] body, Map<String, Object> headers) {
+        long startedAt = System.nanoTime();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            for (Map.Entry<String, Object> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), String.valueOf(header.getValue()));
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            drain(status >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            metrics.webhookDelivered(status, System.nanoTime() - startedAt);
+        } catch (IOException e) {
+            metrics.webhookFailed(System.nanoTime() - startedAt);
+            log.warn(String.format("Callback to %s failed: %s", url, e));
+        }
+    }
+
+    /**
+     * Reads the response to the end so the connection goes back to the keep-alive cache.
+     */
+    private static void drain(InputStream response) throws IOException {
+        if (response == null) {
+            return;
+        }
+        try (InputStream in = response) {
+            byte[] buffer = new byte[512];
+            while (in.read(buffer) >= 0) {
+                // discard
+            }
+        }
+    }
+}
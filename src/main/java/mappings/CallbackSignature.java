@@ -0,0 +1,136 @@
+package mappings;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * HMAC-SHA256 signature of callback bodies, sent as {@code X-Signature: sha256=<hex>}.
+ * <p>
+ * Signing and verification work on the raw body bytes. Each thread keeps its own {@link Mac} and digest
+ * buffer, so verifying a callback allocates nothing and never contends on a shared {@code Mac}.
+ */
+public class CallbackSignature {
+
+    public static final String HEADER = "X-Signature";
+    public static final String DEFAULT_SECRET = "pawaPay-mock-callback-secret";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String PREFIX = "sha256=";
+    private static final int DIGEST_LENGTH = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(this::newThreadState);
+
+    public CallbackSignature(String secret) {
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    public String sign(byte[] body) {
+        ThreadState state = threadState.get();
+        state.mac.update(body);
+        byte[] digest = state.doFinal();
+        char[] header = new char[PREFIX.length() + DIGEST_LENGTH * 2];
+        PREFIX.getChars(0, PREFIX.length(), header, 0);
+        for (int i = 0, j = PREFIX.length(); i < DIGEST_LENGTH; i++) {
+            header[j++] = HEX[(digest[i] >> 4) & 0xf];
+            header[j++] = HEX[digest[i] & 0xf];
+        }
+        return new String(header);
+    }
+
+    public String sign(String body) {
+        return sign(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean verify(byte[] body, String header) {
+        if (!isWellFormed(header)) {
+            return false;
+        }
+        ThreadState state = threadState.get();
+        state.mac.update(body);
+        return matches(state.doFinal(), header);
+    }
+
+    /**
+     * Verifies the bytes between the buffer's position and limit, e.g. a body still held in a network buffer,
+     * without moving its position.
+     */
+    public boolean verify(ByteBuffer body, String header) {
+        if (!isWellFormed(header)) {
+            return false;
+        }
+        ThreadState state = threadState.get();
+        state.mac.update(body.duplicate());
+        return matches(state.doFinal(), header);
+    }
+
+    private static boolean isWellFormed(String header) {
+        return header != null && header.length() == PREFIX.length() + DIGEST_LENGTH * 2 && header.startsWith(PREFIX);
+    }
+
+    /**
+     * Compares the digest with the hex in the header without decoding it into a new array,
+     * in time independent of where the first difference is.
+     */
+    private static boolean matches(byte[] digest, String header) {
+        int diff = 0;
+        for (int i = 0, j = PREFIX.length(); i < DIGEST_LENGTH; i++) {
+            int high = hexValue(header.charAt(j++));
+            int low = hexValue(header.charAt(j++));
+            diff |= (high | low) >>> 31;
+            diff |= (digest[i] & 0xff) ^ ((high << 4) | low);
+        }
+        return diff == 0;
+    }
+
+    /**
+     * Value of an ASCII hex digit, -1 for anything else. {@link Character#digit} would also accept
+     * other Unicode digits, such as fullwidth ones.
+     */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private ThreadState newThreadState() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return new ThreadState(mac);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialise " + ALGORITHM, e);
+        }
+    }
+
+    private static class ThreadState {
+
+        private final Mac mac;
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+
+        private ThreadState(Mac mac) {
+            this.mac = mac;
+        }
+
+        private byte[] doFinal() {
+            try {
+                mac.doFinal(digest, 0);
+                return digest;
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
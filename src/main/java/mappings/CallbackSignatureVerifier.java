@@ -0,0 +1,35 @@
+package mappings;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+
+/**
+ * Rejects callbacks whose {@link CallbackSignature#HEADER} does not match the raw request body with 401.
+ * Registered on the callback receiver, it applies to every request it serves.
+ */
+public class CallbackSignatureVerifier extends ResponseDefinitionTransformer {
+
+    private final CallbackSignature signature;
+
+    public CallbackSignatureVerifier(CallbackSignature signature) {
+        this.signature = signature;
+    }
+
+    @Override
+    public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition, FileSource files, Parameters parameters) {
+        if (signature.verify(request.getBody(), request.getHeader(CallbackSignature.HEADER))) {
+            return responseDefinition;
+        }
+        return aResponse().withStatus(401).build();
+    }
+
+    @Override
+    public String getName() {
+        return "callback-signature-verifier";
+    }
+}
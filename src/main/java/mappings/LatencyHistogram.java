@@ -0,0 +1,73 @@
+package mappings;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket latency histogram with cumulative Prometheus-style buckets from 100 us to 5 s, recorded in nanoseconds.
+ * Recording is a bucket lookup and two {@link LongAdder} increments, so it never blocks concurrent writers.
+ */
+public class LatencyHistogram {
+
+    static final long[] BUCKET_BOUNDS_MICROS = {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000,
+            250_000, 500_000, 1_000_000, 2_500_000, 5_000_000};
+
+    private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS_MICROS.length];
+
+    static {
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            BUCKET_BOUNDS_NANOS[i] = BUCKET_BOUNDS_MICROS[i] * 1_000;
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long sumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Cumulative bucket counts read in one pass: element {@code i} is the number of recorded latencies of at most
+     * {@code BUCKET_BOUNDS_MICROS[i]} us, and the last element, the +Inf bucket, is the total count. Recording may
+     * go on meanwhile, but the counts are monotonic and the last one matches the others.
+     */
+    public long[] cumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            count += buckets[i].sum();
+            counts[i] = count;
+        }
+        return counts;
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        sumNanos.reset();
+    }
+}
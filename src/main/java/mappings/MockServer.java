@@ -0,0 +1,204 @@
+package mappings;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+/**
+ * Runs the payout mock outside JUnit, e.g. {@code java -jar assignment-1.0-SNAPSHOT-standalone.jar --port=8080}.
+ * <p>
+ * Options:
+ * <ul>
+ * <li>{@code --port=N} payouts API port, default 8080 ({@code 0} picks a free port)</li>
+ * <li>{@code --callback-port=N} port of the local callback receiver, default 8090</li>
+ * <li>{@code --callback-url=URL} send callbacks to an external receiver instead; no local receiver is started</li>
+ * <li>{@code --callback-secret=S} HMAC key for the callback {@code X-Signature} header</li>
+ * <li>{@code --container-threads=N} Jetty worker threads per server</li>
+ * <li>{@code --shards=N} run N mocks in this process behind a front-end on {@code --port}, see {@link ShardedMockServer}</li>
+ * <li>{@code --shard-base-port=N} first shard port, following shards use the next ports; free ports by default</li>
+ * <li>{@code --shard-urls=URL,URL} run only the front-end, over mocks started as separate processes</li>
+ * <li>{@code --front-end-threads=N} worker threads of the sharding front-end, default
+ * {@value ShardedMockServer#DEFAULT_FRONT_END_THREADS}</li>
+ * <li>{@code --warm-up} serve one request of each kind against itself and exit; used for the AppCDS training run</li>
+ * </ul>
+ */
+public class MockServer {
+
+    static Logger log = Logger.getLogger(MockServer.class.getName());
+
+    private final WireMockServer server;
+    private final WireMockServer callbackServer;
+    private final CallbackSender callbackSender;
+    private final CallbackSignature signature;
+    private final PayoutMetrics metrics;
+    private String callbackUrl;
+
+    public MockServer(int port, int callbackPort, String callbackUrl, String callbackSecret, Integer containerThreads) {
+        this(port, callbackPort, callbackUrl, callbackSecret, containerThreads, new PayoutMetrics());
+    }
+
+    public MockServer(int port, int callbackPort, String callbackUrl, String callbackSecret, Integer containerThreads,
+                      PayoutMetrics metrics) {
+        this.metrics = metrics;
+        signature = new CallbackSignature(callbackSecret);
+        callbackSender = new CallbackSender(metrics);
+        server = new WireMockServer(configure(options().port(port), containerThreads)
+                .usingFilesUnderClasspath(PayoutStubs.FILES_ROOT)
+                .httpServerFactory(metrics.httpServerFactory())
+                .extensions(callbackSender, metrics));
+        callbackServer = callbackUrl == null
+                ? new WireMockServer(configure(options().port(callbackPort), containerThreads)
+                        .httpServerFactory(metrics.httpServerFactory())
+                        .extensions(new CallbackSignatureVerifier(signature), metrics))
+                : null;
+        this.callbackUrl = callbackUrl;
+    }
+
+    static WireMockConfiguration configure(WireMockConfiguration options, Integer containerThreads) {
+        return containerThreads == null ? options : options.containerThreads(containerThreads);
+    }
+
+    public void start() {
+        start(true);
+    }
+
+    /**
+     * @param logFirstRequest false for shards behind a front-end, which logs the first request itself
+     */
+    void start(boolean logFirstRequest) {
+        StartupLog startup = new StartupLog();
+        if (callbackServer != null) {
+            callbackServer.start();
+            PayoutStubs.stubCallbackReceiver(callbackServer);
+            callbackUrl = "http://localhost:" + callbackServer.port() + PayoutStubs.CALLBACK_PATH;
+        }
+        PayoutStubs.stubPayouts(server, callbackUrl, signature);
+        if (logFirstRequest) {
+            server.addMockServiceRequestListener((request, response) -> startup.requestServed());
+        }
+        server.start();
+        startup.ready();
+        log.info("Payouts API: " + server.baseUrl() + PayoutStubs.PAYOUTS_PATH);
+        log.info("Callbacks: " + callbackUrl);
+        log.info("Metrics: " + server.baseUrl() + "/__admin/metrics");
+    }
+
+    public void stop() {
+        server.stop();
+        callbackSender.shutdown();
+        if (callbackServer != null) {
+            callbackServer.stop();
+        }
+    }
+
+    public WireMockServer server() {
+        return server;
+    }
+
+    public PayoutMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Where callbacks are posted; known once the server has started.
+     */
+    public String callbackUrl() {
+        return callbackUrl;
+    }
+
+    /**
+     * Exercises the creation, webhook and status paths once so that their classes are loaded
+     * and end up in a class-data sharing archive dumped at exit.
+     */
+    void warmUp() throws IOException, InterruptedException {
+        request("POST", PayoutStubs.PAYOUTS_PATH, "{\"payoutId\": \"2\"}");
+        request("POST", PayoutStubs.PAYOUTS_PATH, "{\"payoutId\": \"1\"}");
+        request("GET", PayoutStubs.PAYOUTS_PATH + "/5", null);
+        Thread.sleep(500);
+    }
+
+    private void request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(server.baseUrl() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        log.info(String.format("Warm-up %s %s: %d", method, path, connection.getResponseCode()));
+        connection.disconnect();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        int callbackPort = 8090;
+        String callbackUrl = null;
+        String callbackSecret = CallbackSignature.DEFAULT_SECRET;
+        Integer containerThreads = null;
+        int shardCount = 1;
+        int shardBasePort = 0;
+        List<String> shardUrls = null;
+        int frontEndThreads = ShardedMockServer.DEFAULT_FRONT_END_THREADS;
+        boolean warmUp = false;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--callback-port=")) {
+                callbackPort = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--callback-url=")) {
+                callbackUrl = value(arg);
+            } else if (arg.startsWith("--callback-secret=")) {
+                callbackSecret = value(arg);
+            } else if (arg.startsWith("--container-threads=")) {
+                containerThreads = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--shards=")) {
+                shardCount = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--shard-base-port=")) {
+                shardBasePort = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--shard-urls=")) {
+                shardUrls = Arrays.asList(value(arg).split(","));
+            } else if (arg.startsWith("--front-end-threads=")) {
+                frontEndThreads = Integer.parseInt(value(arg));
+            } else if (arg.equals("--warm-up")) {
+                warmUp = true;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        if (shardUrls != null || shardCount > 1) {
+            ShardedMockServer shardedServer = shardUrls != null
+                    ? new ShardedMockServer(port, shardUrls, frontEndThreads)
+                    : new ShardedMockServer(port, shardCount, shardBasePort, callbackPort, callbackUrl, callbackSecret,
+                    containerThreads, frontEndThreads);
+            shardedServer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(shardedServer::stop));
+            return;
+        }
+
+        MockServer mockServer = new MockServer(port, callbackPort, callbackUrl, callbackSecret, containerThreads);
+        mockServer.start();
+        if (warmUp) {
+            mockServer.warmUp();
+            mockServer.stop();
+            System.exit(0);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(mockServer::stop));
+    }
+
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+}
@@ -0,0 +1,375 @@
+package mappings;
+
+import com.github.tomakehurst.wiremock.admin.Router;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.extension.AdminApiExtension;
+import com.github.tomakehurst.wiremock.extension.PostServeAction;
+import com.github.tomakehurst.wiremock.http.AdminRequestHandler;
+import com.github.tomakehurst.wiremock.http.HttpServerFactory;
+import com.github.tomakehurst.wiremock.http.LoggedResponse;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.StubRequestHandler;
+import com.github.tomakehurst.wiremock.jetty9.JettyHttpServer;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import util.JsonFieldReader;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.responseDefinition;
+
+/**
+ * Live counters of the payout mock: requests and latency per endpoint, responses per payout status, creation requests
+ * per correspondent, callbacks received per HTTP status, and webhook deliveries with their outcome and latency as
+ * reported by {@link CallbackSender}.
+ * <p>
+ * Register the same instance on the payouts server and on the callback receiver, both as an extension and through
+ * {@link #httpServerFactory()}, which times requests with {@link System#nanoTime()}. Counters are {@link LongAdder}s,
+ * so reading them is O(1) and safe while load is running, unlike {@code verify()} which scans the request journal.
+ * They are also served in Prometheus text format on {@code GET /__admin/metrics}.
+ */
+public class PayoutMetrics extends PostServeAction implements AdminApiExtension {
+
+    public enum Endpoint {
+        CREATE_PAYOUT("create_payout"),
+        GET_PAYOUT("get_payout"),
+        CALLBACK("callback"),
+        OTHER("other");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    public static final String ERROR = "ERROR";
+
+    /**
+     * Distinct correspondents counted before further new ones are folded into {@link #OTHER_CORRESPONDENT},
+     * so that arbitrary request bodies cannot grow the label set without limit.
+     */
+    public static final int MAX_CORRESPONDENTS = 64;
+    public static final String OTHER_CORRESPONDENT = "other";
+
+    private static final JsonFieldReader CORRESPONDENT = JsonFieldReader.compile("correspondent");
+    private static final JsonFieldReader STATUS = JsonFieldReader.compile("status");
+
+    private final LongAdder[] requests = new LongAdder[Endpoint.values().length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Endpoint.values().length];
+    private final ConcurrentMap<String, LongAdder> responseStatuses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> correspondents = new ConcurrentHashMap<>();
+    private final AtomicInteger correspondentSlots = new AtomicInteger();
+    private final ConcurrentMap<Integer, LongAdder> callbacksReceived = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, LongAdder> webhookDeliveries = new ConcurrentHashMap<>();
+    private final LongAdder webhookFailures = new LongAdder();
+    private final LatencyHistogram webhookLatency = new LatencyHistogram();
+
+    public PayoutMetrics() {
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new LongAdder();
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "payout-metrics";
+    }
+
+    @Override
+    public void doGlobalAction(ServeEvent serveEvent, Admin admin) {
+        LoggedRequest request = serveEvent.getRequest();
+        LoggedResponse response = serveEvent.getResponse();
+        Endpoint endpoint = endpoint(request.getMethod(), request.getUrl());
+
+        requests[endpoint.ordinal()].increment();
+        switch (endpoint) {
+            case CREATE_PAYOUT:
+                String correspondent = read(CORRESPONDENT, request.getBody())[0];
+                if (correspondent != null) {
+                    incrementCorrespondent(correspondent);
+                }
+                increment(responseStatuses, status(response));
+                break;
+            case GET_PAYOUT:
+                increment(responseStatuses, status(response));
+                break;
+            case CALLBACK:
+                increment(callbacksReceived, response.getStatus());
+                break;
+            default:
+                break;
+        }
+    }
+
+    static Endpoint endpoint(RequestMethod method, String url) {
+        int query = url.indexOf('?');
+        String path = query < 0 ? url : url.substring(0, query);
+        if (RequestMethod.POST.equals(method) && path.equals(PayoutStubs.PAYOUTS_PATH)) {
+            return Endpoint.CREATE_PAYOUT;
+        }
+        if (RequestMethod.GET.equals(method) && path.startsWith(PayoutStubs.PAYOUTS_PATH + "/")) {
+            return Endpoint.GET_PAYOUT;
+        }
+        if (RequestMethod.POST.equals(method) && path.equals(PayoutStubs.CALLBACK_PATH)) {
+            return Endpoint.CALLBACK;
+        }
+        return Endpoint.OTHER;
+    }
+
+    private static String status(LoggedResponse response) {
+        if (response.getStatus() >= 400) {
+            return ERROR;
+        }
+        String status = read(STATUS, response.getBody())[0];
+        return status != null ? status : ERROR;
+    }
+
+    private static String[] read(JsonFieldReader reader, byte[] body) {
+        if (body == null || body.length == 0) {
+            return new String[reader.size()];
+        }
+        try {
+            return reader.read(body);
+        } catch (UncheckedIOException e) {
+            return new String[reader.size()];
+        }
+    }
+
+    /**
+     * A new correspondent gets its own counter only if it can reserve one of the {@link #MAX_CORRESPONDENTS} slots,
+     * so concurrent first requests of different correspondents cannot overshoot the cap.
+     */
+    private void incrementCorrespondent(String correspondent) {
+        LongAdder counter = correspondents.get(correspondent);
+        if (counter == null) {
+            counter = correspondents.computeIfAbsent(correspondent, k -> correspondentSlots
+                    .getAndUpdate(slots -> slots < MAX_CORRESPONDENTS ? slots + 1 : slots) < MAX_CORRESPONDENTS
+                    ? new LongAdder()
+                    : null);
+            if (counter == null) {
+                counter = correspondents.computeIfAbsent(OTHER_CORRESPONDENT, k -> new LongAdder());
+            }
+        }
+        counter.increment();
+    }
+
+    private static <K> void increment(ConcurrentMap<K, LongAdder> counters, K key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    private static <K> long count(Map<K, LongAdder> counters, K key) {
+        LongAdder counter = counters.get(key);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    void webhookDelivered(int httpStatus, long nanos) {
+        increment(webhookDeliveries, httpStatus);
+        webhookLatency.record(nanos);
+    }
+
+    void webhookFailed(long nanos) {
+        webhookFailures.increment();
+        webhookLatency.record(nanos);
+    }
+
+    public long requests(Endpoint endpoint) {
+        return requests[endpoint.ordinal()].sum();
+    }
+
+    public LatencyHistogram latency(Endpoint endpoint) {
+        return latencies[endpoint.ordinal()];
+    }
+
+    /**
+     * Creation and status responses with the given payout status, e.g. ACCEPTED or COMPLETED,
+     * or {@link #ERROR} for error bodies and HTTP errors.
+     */
+    public long responses(String status) {
+        return count(responseStatuses, status);
+    }
+
+    public long correspondentRequests(String correspondent) {
+        return count(correspondents, correspondent);
+    }
+
+    /**
+     * Callbacks answered by the built-in receiver with the given HTTP status.
+     */
+    public long callbacksReceived(int httpStatus) {
+        return count(callbacksReceived, httpStatus);
+    }
+
+    /**
+     * Callbacks sent that the receiver answered with the given HTTP status.
+     */
+    public long webhookDeliveries(int httpStatus) {
+        return count(webhookDeliveries, httpStatus);
+    }
+
+    /**
+     * Callbacks sent that got no HTTP response, e.g. because the receiver refused the connection or timed out.
+     */
+    public long webhookFailures() {
+        return webhookFailures.sum();
+    }
+
+    public LatencyHistogram webhookLatency() {
+        return webhookLatency;
+    }
+
+    public void reset() {
+        for (int i = 0; i < requests.length; i++) {
+            requests[i].reset();
+            latencies[i].reset();
+        }
+        responseStatuses.clear();
+        correspondents.clear();
+        correspondentSlots.set(0);
+        callbacksReceived.clear();
+        webhookDeliveries.clear();
+        webhookFailures.reset();
+        webhookLatency.reset();
+    }
+
+    public String prometheusText() {
+        StringBuilder text = new StringBuilder();
+        text.append("# TYPE payout_mock_requests_total counter\n");
+        for (Endpoint endpoint : Endpoint.values()) {
+            sample(text, "payout_mock_requests_total", "endpoint", endpoint.label(), requests(endpoint));
+        }
+
+        text.append("# TYPE payout_mock_request_duration_seconds histogram\n");
+        for (Endpoint endpoint : Endpoint.values()) {
+            histogram(text, "payout_mock_request_duration_seconds", "endpoint=\"" + endpoint.label() + "\"",
+                    latency(endpoint));
+        }
+
+        text.append("# TYPE payout_mock_responses_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(responseStatuses).entrySet()) {
+            sample(text, "payout_mock_responses_total", "status", entry.getKey(), entry.getValue().sum());
+        }
+
+        text.append("# TYPE payout_mock_correspondent_requests_total counter\n");
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(correspondents).entrySet()) {
+            sample(text, "payout_mock_correspondent_requests_total", "correspondent", entry.getKey(), entry.getValue().sum());
+        }
+
+        text.append("# TYPE payout_mock_callbacks_received_total counter\n");
+        for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(callbacksReceived).entrySet()) {
+            sample(text, "payout_mock_callbacks_received_total", "http_status", entry.getKey().toString(), entry.getValue().sum());
+        }
+
+        text.append("# TYPE payout_mock_webhook_deliveries_total counter\n");
+        for (Map.Entry<Integer, LongAdder> entry : new TreeMap<>(webhookDeliveries).entrySet()) {
+            sample(text, "payout_mock_webhook_deliveries_total", "http_status", entry.getKey().toString(), entry.getValue().sum());
+        }
+        text.append("# TYPE payout_mock_webhook_delivery_failures_total counter\n");
+        text.append("payout_mock_webhook_delivery_failures_total ").append(webhookFailures()).append('\n');
+        text.append("# TYPE payout_mock_webhook_delivery_duration_seconds histogram\n");
+        histogram(text, "payout_mock_webhook_delivery_duration_seconds", "", webhookLatency);
+        return text.toString();
+    }
+
+    private static void sample(StringBuilder text, String name, String label, String value, Object sample) {
+        text.append(name).append('{').append(label).append("=\"").append(escape(value)).append("\"} ")
+                .append(sample).append('\n');
+    }
+
+    /**
+     * @param labels rendered labels other than {@code le}, e.g. {@code endpoint="callback"}, or empty
+     */
+    private static void histogram(StringBuilder text, String name, String labels, LatencyHistogram latency) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long[] bounds = LatencyHistogram.BUCKET_BOUNDS_MICROS;
+        long[] counts = latency.cumulativeCounts();
+        for (int i = 0; i <= bounds.length; i++) {
+            String le = i < bounds.length ? BigDecimal.valueOf(bounds[i], 6).stripTrailingZeros().toPlainString() : "+Inf";
+            text.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+                    .append(counts[i]).append('\n');
+        }
+        String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+        text.append(name).append("_sum").append(suffix).append(latency.sumNanos() / 1e9).append('\n');
+        text.append(name).append("_count").append(suffix).append(counts[bounds.length]).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public void contributeAdminApiRoutes(Router router) {
+        router.add(RequestMethod.GET, "/metrics", (admin, request, pathParams) -> responseDefinition()
+                .withStatus(200)
+                .withHeader("Content-Type", "text/plain; version=0.0.4")
+                .withBody(prometheusText())
+                .build());
+    }
+
+    /**
+     * WireMock's Jetty server with a handler around its own that records the latency of every non-admin request,
+     * from when Jetty hands it over until the response has been sent.
+     */
+    public HttpServerFactory httpServerFactory() {
+        return TimedJettyHttpServer::new;
+    }
+
+    private class TimedJettyHttpServer extends JettyHttpServer {
+
+        TimedJettyHttpServer(Options options, AdminRequestHandler adminRequestHandler,
+                             StubRequestHandler stubRequestHandler) {
+            super(options, adminRequestHandler, stubRequestHandler);
+        }
+
+        @Override
+        protected HandlerCollection createHandler(Options options, AdminRequestHandler adminRequestHandler,
+                                                  StubRequestHandler stubRequestHandler) {
+            RequestTimer timer = new RequestTimer();
+            timer.setHandler(super.createHandler(options, adminRequestHandler, stubRequestHandler));
+            HandlerCollection handlers = new HandlerCollection();
+            handlers.addHandler(timer);
+            return handlers;
+        }
+    }
+
+    private class RequestTimer extends HandlerWrapper {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+                throws IOException, ServletException {
+            long startedAt = System.nanoTime();
+            try {
+                super.handle(target, baseRequest, request, response);
+            } finally {
+                if (!target.startsWith("/__admin")) {
+                    Endpoint endpoint = endpoint(RequestMethod.fromString(request.getMethod()), target);
+                    latencies[endpoint.ordinal()].record(System.nanoTime() - startedAt);
+                }
+            }
+        }
+    }
+}
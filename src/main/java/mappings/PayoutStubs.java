@@ -0,0 +1,107 @@
+package mappings;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+
+/**
+ * Stubs of the pawaPayBusiness payouts API. Shared by the JUnit rules in {@code MockService} and the
+ * standalone {@link MockServer}, so both serve exactly the same fixtures.
+ */
+public class PayoutStubs {
+
+    /**
+     * Classpath root holding the {@code __files} fixtures, for {@code usingFilesUnderClasspath}.
+     */
+    public static final String FILES_ROOT = "payout-mock";
+
+    public static final String PAYOUTS_PATH = "/pawaPayBusiness/v1/payouts";
+    public static final String CALLBACK_PATH = "/callback";
+
+    private PayoutStubs() {
+    }
+
+    public static void stubCallbackReceiver(WireMockServer targetServer) {
+        targetServer.stubFor(any(anyUrl())
+                .willReturn(aResponse().withStatus(200)));
+    }
+
+    /**
+     * Callback bodies are fixed per stub, so their signatures are computed here once rather than per callback.
+     */
+    public static void stubPayouts(WireMockServer server, String callbackUrl, CallbackSignature signature) {
+        stubAcceptedWithCallback(server, callbackUrl, signature, "2", "17:33");
+        stubAcceptedWithCallback(server, callbackUrl, signature, "5", "17:45");
+        stubAcceptedWithCallback(server, callbackUrl, signature, "6", "17:55");
+        stubAcceptedWithCallback(server, callbackUrl, signature, "7", "17:57");
+        stubAcceptedWithCallback(server, callbackUrl, signature, "8", "17:59");
+        stubAcceptedWithCallback(server, callbackUrl, signature, "9", "18:00");
+
+        stubCreation(server, "1", "json/payoutRequestCreationResponseRejected.json");
+        stubCreation(server, "3", "json/payoutRequestCreationResponseDuplicateIgnored.json");
+        stubCreation(server, "4", "json/payoutRequestCreationUnknownError.json");
+
+        stubStatus(server, "2", "json/payoutFinalCompleted.json");
+        stubStatus(server, "5", "json/payoutFinalCancelled.json");
+        stubStatus(server, "6", "json/payoutFinalFailed.json");
+        stubStatus(server, "7", "json/payoutPending.json");
+        stubStatus(server, "8", "json/payoutSubmitted.json");
+        stubStatus(server, "9", "json/payoutUnknownError.json");
+    }
+
+    public static String callbackBody(String time) {
+        return "{\"created\": \"2000-03-09T" + time + ":29Z\"," +
+                "\"amount\": \"15.21\"," +
+                "\"currency\": \"ZMW\"," +
+                "\"recipient\": {" +
+                "\"type\": \"MSISDN\"," +
+                "\"address\": {" +
+                "\"value\": 256780334452}}," +
+                "\"correspondent\": \"MTN_MOMO_ZMB\"," +
+                "\"country\": \"ZMB\"," +
+                "\"payoutId\": \"f4401bd2-1568-4140-bf2d-eb77d2b2b639\"," +
+                "\"statementDescription\": \"Payout #123\"," +
+                "\"customerTimestamp\": \"2000-03-09T" + time + ":29Z\"," +
+                "\"receivedByRecipient\": \"2000-03-09T" + time + ":30Z\"," +
+                "\"correspondentIds\": {" +
+                "\"MTN_INIT\": \"ABC123\"," +
+                "\"MTN_FINAL\": \"DEF456\"}," +
+                "\"status\": \"ACCEPTED\"" +
+                "}}";
+    }
+
+    private static void stubAcceptedWithCallback(WireMockServer server, String callbackUrl, CallbackSignature signature,
+                                                 String payoutId, String time) {
+        String callbackBody = callbackBody(time);
+        Map<String, String> callbackHeaders = new LinkedHashMap<>();
+        callbackHeaders.put("Content-Type", "application/json");
+        callbackHeaders.put(CallbackSignature.HEADER, signature.sign(callbackBody));
+        server.stubFor(post(urlPathEqualTo(PAYOUTS_PATH))
+                .withRequestBody(matchingJsonPath(
+                        "$.[?(@.payoutId== '" + payoutId + "')]"))
+                .willReturn(aResponse().withStatus(200)
+                        .withBodyFile("json/payoutID" + payoutId + "RequestCreationResponseAccepted.json"))
+                .withPostServeAction(CallbackSender.NAME,
+                        CallbackSender.callback(callbackUrl, callbackBody, callbackHeaders))
+        );
+    }
+
+    private static void stubCreation(WireMockServer server, String payoutId, String bodyFile) {
+        server.stubFor(post(urlPathEqualTo(PAYOUTS_PATH))
+                .withRequestBody(matchingJsonPath(
+                        "$.[?(@.payoutId== '" + payoutId + "')]"))
+                .willReturn(aResponse().withStatus(200).withBodyFile(bodyFile))
+        );
+    }
+
+    private static void stubStatus(WireMockServer server, String payoutId, String bodyFile) {
+        server.stubFor(get(urlEqualTo(PAYOUTS_PATH + "/" + payoutId))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile(bodyFile)));
+    }
+}
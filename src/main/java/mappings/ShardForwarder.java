@@ -0,0 +1,185 @@
+package mappings;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Front-end of a {@link ShardedMockServer}: forwards every request to the shard picked by a {@link ShardRouter}.
+ * <p>
+ * Forwarding is asynchronous. The request is suspended while the shard answers and the Jetty client completes it
+ * from its callback, so a front-end thread is only held while a request is read or a response written, and the
+ * front-end pool does not cap throughput the way a blocking WireMock proxy with a shard-sized pool does.
+ * <p>
+ * Server and client share one pool. The server acceptor and the server and client selectors each pin a pool thread
+ * for good, so their counts are fixed here rather than left to Jetty's per-CPU defaults, and the pool gets them on top
+ * of {@code threads} workers. A shard that does not answer within {@value #FORWARD_TIMEOUT_SECONDS} s gets a 502.
+ */
+class ShardForwarder {
+
+    static Logger log = Logger.getLogger(ShardForwarder.class.getName());
+
+    static final String METRICS_PATH = "/__admin/metrics";
+    static final long FORWARD_TIMEOUT_SECONDS = 30;
+
+    private static final int ACCEPTORS = 1;
+    private static final int SELECTORS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    private static final Set<String> NOT_FORWARDED = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "te", "trailer",
+            "transfer-encoding", "upgrade", "host", "content-length", "date", "server"));
+
+    private final ShardRouter router;
+    private final PayoutMetrics metrics;
+    private final StartupLog startup;
+    private final Server server;
+    private final ServerConnector connector;
+    private final HttpClient client;
+
+    /**
+     * @param metrics served on {@value #METRICS_PATH}, or null to answer 404 there
+     * @param threads worker threads, on top of the acceptor and selector threads
+     */
+    ShardForwarder(int port, ShardRouter router, int threads, PayoutMetrics metrics, StartupLog startup) {
+        this.router = router;
+        this.metrics = metrics;
+        this.startup = startup;
+
+        QueuedThreadPool pool = new QueuedThreadPool(ACCEPTORS + 2 * SELECTORS + threads);
+        pool.setName("front-end");
+        server = new Server(pool);
+        connector = new ServerConnector(server, ACCEPTORS, SELECTORS);
+        connector.setPort(port);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        ServletHolder forwarding = new ServletHolder(new ForwardingServlet());
+        forwarding.setAsyncSupported(true);
+        context.addServlet(forwarding, "/*");
+        server.setHandler(context);
+
+        client = new HttpClient(new HttpClientTransportOverHTTP(SELECTORS), null);
+        client.setExecutor(pool);
+        client.setFollowRedirects(false);
+        // Allocated up front per shard; the default of 1024 rejects requests under load tests
+        client.setMaxRequestsQueuedPerDestination(16_384);
+    }
+
+    void start() throws Exception {
+        server.start();
+        client.start();
+        // Pass compressed responses through as they are; the client registers gzip decoding on start
+        client.getContentDecoderFactories().clear();
+    }
+
+    void stop() throws Exception {
+        client.stop();
+        server.stop();
+    }
+
+    int port() {
+        return connector.getLocalPort();
+    }
+
+    private class ForwardingServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            String url = request.getQueryString() == null
+                    ? request.getRequestURI()
+                    : request.getRequestURI() + "?" + request.getQueryString();
+            if (url.startsWith("/__admin/")) {
+                serveAdmin(request, response);
+                startup.requestServed();
+                return;
+            }
+
+            byte[] body = IO.readBytes(request.getInputStream());
+            org.eclipse.jetty.client.api.Request forwarded = client
+                    .newRequest(router.shardUrlFor(url, body) + url)
+                    .method(request.getMethod())
+                    .timeout(FORWARD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            for (String name : Collections.list(request.getHeaderNames())) {
+                if (!NOT_FORWARDED.contains(name.toLowerCase(Locale.ROOT))) {
+                    for (Enumeration<String> values = request.getHeaders(name); values.hasMoreElements(); ) {
+                        forwarded.header(name, values.nextElement());
+                    }
+                }
+            }
+            if (body.length > 0) {
+                String contentType = request.getContentType();
+                forwarded.content(contentType == null
+                        ? new BytesContentProvider(body)
+                        : new BytesContentProvider(contentType, body));
+            }
+
+            AsyncContext async = request.startAsync();
+            async.setTimeout(0);
+            forwarded.send(new BufferingResponseListener() {
+                @Override
+                public void onComplete(Result result) {
+                    HttpServletResponse out = (HttpServletResponse) async.getResponse();
+                    try {
+                        if (result.isFailed()) {
+                            log.warn("Forwarding " + url + " failed", result.getFailure());
+                            out.sendError(HttpServletResponse.SC_BAD_GATEWAY);
+                        } else {
+                            out.setStatus(result.getResponse().getStatus());
+                            for (HttpField field : result.getResponse().getHeaders()) {
+                                if (!NOT_FORWARDED.contains(field.getName().toLowerCase(Locale.ROOT))) {
+                                    out.addHeader(field.getName(), field.getValue());
+                                }
+                            }
+                            byte[] content = getContent();
+                            out.setContentLength(content.length);
+                            out.getOutputStream().write(content);
+                        }
+                    } catch (IOException e) {
+                        log.warn("Writing the response to " + url + " failed", e);
+                    } finally {
+                        async.complete();
+                        startup.requestServed();
+                    }
+                }
+            });
+        }
+
+        private void serveAdmin(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if (metrics == null || !"GET".equals(request.getMethod()) || !METRICS_PATH.equals(request.getRequestURI())) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            byte[] text = metrics.prometheusText().getBytes(StandardCharsets.UTF_8);
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("text/plain; version=0.0.4");
+            response.setContentLength(text.length);
+            response.getOutputStream().write(text);
+        }
+    }
+}
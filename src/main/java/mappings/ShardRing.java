@@ -0,0 +1,66 @@
+package mappings;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hash ring over shard names. Each shard owns {@value #VIRTUAL_NODES} points on the ring and a key
+ * belongs to the first point at or after its hash, so adding or removing a shard only moves the keys of that shard.
+ * The ring is immutable; lookups are a binary search over a sorted array.
+ */
+public class ShardRing {
+
+    static final int VIRTUAL_NODES = 160;
+
+    private final int[] points;
+    private final int[] owners;
+
+    public ShardRing(List<String> shardNames) {
+        if (shardNames.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        long[] ring = new long[shardNames.size() * VIRTUAL_NODES];
+        for (int shard = 0, i = 0; shard < shardNames.size(); shard++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                int point = hash(shardNames.get(shard) + "#" + node);
+                ring[i++] = ((long) point << 32) | shard;
+            }
+        }
+        Arrays.sort(ring);
+        points = new int[ring.length];
+        owners = new int[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = (int) (ring[i] >> 32);
+            owners[i] = (int) ring[i];
+        }
+    }
+
+    /**
+     * Returns the index, in the list given to the constructor, of the shard owning {@code key}.
+     */
+    public int shardFor(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * FNV-1a over the UTF-16 code units followed by the murmur3 finaliser, which spreads short,
+     * sequential ids such as "1", "2", "3" across the ring.
+     */
+    static int hash(String key) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,64 @@
+package mappings;
+
+import util.JsonFieldReader;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Picks the shard owning a request's payoutId: the path segment after {@code /payouts/} for status requests,
+ * the {@code payoutId} field of the body for creation requests. Requests without a payoutId are routed on their URL.
+ * <p>
+ * Used by the {@link ShardForwarder} front-end, and by load clients that route themselves to skip the extra hop:
+ * build it over the same shard URLs, in the same order, as the front-end.
+ */
+public class ShardRouter {
+
+    private static final JsonFieldReader PAYOUT_ID = JsonFieldReader.compile("payoutId");
+    private static final String PAYOUT_PREFIX = PayoutStubs.PAYOUTS_PATH + "/";
+
+    private final List<String> shardUrls;
+    private final ShardRing ring;
+
+    public ShardRouter(List<String> shardUrls) {
+        this.shardUrls = Collections.unmodifiableList(new ArrayList<>(shardUrls));
+        this.ring = new ShardRing(this.shardUrls);
+    }
+
+    public int shardFor(String payoutId) {
+        return ring.shardFor(payoutId);
+    }
+
+    public String shardUrlFor(String payoutId) {
+        return shardUrls.get(shardFor(payoutId));
+    }
+
+    /**
+     * Base URL of the shard for a request to {@code url}, the path and query, with the given body.
+     */
+    public String shardUrlFor(String url, byte[] body) {
+        String payoutId = payoutId(url, body);
+        return shardUrlFor(payoutId != null ? payoutId : url);
+    }
+
+    public List<String> shardUrls() {
+        return shardUrls;
+    }
+
+    static String payoutId(String url, byte[] body) {
+        if (url.startsWith(PAYOUT_PREFIX)) {
+            int end = url.indexOf('?');
+            return url.substring(PAYOUT_PREFIX.length(), end < 0 ? url.length() : end);
+        }
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        try {
+            return PAYOUT_ID.readFirst(body);
+        } catch (UncheckedIOException e) {
+            return null;
+        }
+    }
+}
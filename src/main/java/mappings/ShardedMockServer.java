@@ -0,0 +1,150 @@
+package mappings;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several payout mocks behind a front-end that routes on payoutId with a {@link ShardRing}, to get past the
+ * Jetty thread pool of a single WireMock instance.
+ * <p>
+ * Every request for a payout lands on the same shard, so that shard's request journal holds the whole history
+ * of the payout and creation, duplicate and status requests stay consistent. The shards either run in this
+ * process or are separate {@link MockServer} processes given by URL. In-process shards all post their
+ * callbacks to the receiver started by the first one.
+ * <p>
+ * The front-end is a {@link ShardForwarder} with its own pool of {@code frontEndThreads}. Load clients can also
+ * skip it and send each request straight to {@link #router()}{@code .shardUrlFor(url, body)}.
+ */
+public class ShardedMockServer {
+
+    static Logger log = Logger.getLogger(ShardedMockServer.class.getName());
+
+    public static final int DEFAULT_FRONT_END_THREADS = 50;
+
+    private final int port;
+    private final Integer containerThreads;
+    private final int frontEndThreads;
+    private final List<String> shardUrls = new ArrayList<>();
+    private final List<MockServer> shards = new ArrayList<>();
+    private final int shardCount;
+    private final int shardBasePort;
+    private final int callbackPort;
+    private final String callbackUrl;
+    private final String callbackSecret;
+    private final PayoutMetrics metrics = new PayoutMetrics();
+    private ShardForwarder frontEnd;
+    private ShardRouter router;
+
+    /**
+     * {@code shardCount} shards in this process on consecutive ports from {@code shardBasePort},
+     * or on free ports when it is 0.
+     */
+    public ShardedMockServer(int port, int shardCount, int shardBasePort, int callbackPort, String callbackUrl,
+                             String callbackSecret, Integer containerThreads, int frontEndThreads) {
+        this.port = port;
+        this.shardCount = shardCount;
+        this.shardBasePort = shardBasePort;
+        this.callbackPort = callbackPort;
+        this.callbackUrl = callbackUrl;
+        this.callbackSecret = callbackSecret;
+        this.containerThreads = containerThreads;
+        this.frontEndThreads = frontEndThreads;
+    }
+
+    /**
+     * Front-end only, over shards running in other processes.
+     */
+    public ShardedMockServer(int port, List<String> shardUrls, int frontEndThreads) {
+        this(port, 0, 0, 0, null, null, null, frontEndThreads);
+        this.shardUrls.addAll(shardUrls);
+    }
+
+    /**
+     * Starts the shards, then the front-end. If any of them fails, whatever was already started is stopped again.
+     */
+    public void start() {
+        StartupLog startup = new StartupLog();
+        try {
+            String shardCallbackUrl = callbackUrl;
+            for (int i = 0; i < shardCount; i++) {
+                int shardPort = shardBasePort == 0 ? 0 : shardBasePort + i;
+                MockServer shard = new MockServer(shardPort, callbackPort, shardCallbackUrl, callbackSecret,
+                        containerThreads, metrics);
+                // Added first, so a shard whose callback receiver started before its own port failed is stopped too
+                shards.add(shard);
+                shard.start(false);
+                shardCallbackUrl = shard.callbackUrl();
+                shardUrls.add(shard.server().baseUrl());
+            }
+            router = new ShardRouter(shardUrls);
+            frontEnd = new ShardForwarder(port, router, frontEndThreads, shards.isEmpty() ? null : metrics, startup);
+            try {
+                frontEnd.start();
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot start the front-end on port " + port, e);
+            }
+        } catch (RuntimeException e) {
+            stop();
+            throw e;
+        }
+        startup.ready();
+        log.info(String.format("Front-end %s over %d shard(s): %s", baseUrl(), shardUrls.size(), shardUrls));
+    }
+
+    public void stop() {
+        if (frontEnd != null) {
+            try {
+                frontEnd.stop();
+            } catch (Exception e) {
+                log.warn("Cannot stop the front-end", e);
+            }
+        }
+        for (MockServer shard : shards) {
+            shard.stop();
+        }
+    }
+
+    public int port() {
+        return frontEnd.port();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + port();
+    }
+
+    /**
+     * The ring the front-end routes with, for clients that route to the shards themselves.
+     */
+    public ShardRouter router() {
+        return router;
+    }
+
+    /**
+     * The in-process shard owning {@code payoutId}, e.g. to {@code verify} requests on it.
+     *
+     * @throws IllegalStateException if the shards run in other processes, see {@link #shardUrlFor}
+     */
+    public MockServer shardFor(String payoutId) {
+        if (shards.isEmpty()) {
+            throw new IllegalStateException("Shards run in other processes, use shardUrlFor(\"" + payoutId + "\")");
+        }
+        return shards.get(router.shardFor(payoutId));
+    }
+
+    public String shardUrlFor(String payoutId) {
+        return router.shardUrlFor(payoutId);
+    }
+
+    /**
+     * Aggregate metrics of the in-process shards, also served on {@code /__admin/metrics} of the front-end.
+     */
+    public PayoutMetrics metrics() {
+        return metrics;
+    }
+
+    public List<MockServer> shards() {
+        return shards;
+    }
+}
@@ -0,0 +1,36 @@
+package mappings;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Startup timing of one server: how long {@code start()} took and, once the first request has been served, when the
+ * server was ready in ms since JVM start, which is what class-data sharing shortens, and how long after that the first
+ * request came. The JVM start time is only looked up then, keeping the management classes off the startup path.
+ */
+class StartupLog {
+
+    static Logger log = Logger.getLogger(StartupLog.class.getName());
+
+    private final long startedAt = System.nanoTime();
+    private final AtomicBoolean firstRequestServed = new AtomicBoolean();
+    private volatile long readyAt;
+    private volatile long readyAtMillis;
+
+    void ready() {
+        readyAt = System.nanoTime();
+        readyAtMillis = System.currentTimeMillis();
+        log.info(String.format("Started in %d ms", (readyAt - startedAt) / 1_000_000));
+    }
+
+    void requestServed() {
+        if (firstRequestServed.compareAndSet(false, true)) {
+            long firstRequestAfter = (System.nanoTime() - readyAt) / 1_000_000;
+            long readySinceJvmStart = readyAtMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+            log.info(String.format("Ready %d ms since JVM start, first request served %d ms after ready",
+                    readySinceJvmStart, firstRequestAfter));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads a fixed set of dotted field paths (e.g. {@code status}, {@code rejectionReason.rejectionReason})
+ * from a JSON body with a streaming parser. Objects that cannot contain a requested path are skipped
+ * and, in {@link #read}, parsing stops as soon as every path has been found, so no tree is built for the body.
+ * {@link #readStrict} reads the same values but tokenizes the rest of the body, so it also rejects invalid JSON
+ * after the last requested field.
+ * <p>
+ * A top-level array is read through its first element. Instances are immutable and can be shared between threads.
+ */
+public final class JsonFieldReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String[][] paths;
+
+    private JsonFieldReader(String[][] paths) {
+        this.paths = paths;
+    }
+
+    public static JsonFieldReader compile(String... paths) {
+        String[][] compiled = new String[paths.length][];
+        for (int i = 0; i < paths.length; i++) {
+            compiled[i] = paths[i].split("\\.");
+        }
+        return new JsonFieldReader(compiled);
+    }
+
+    /**
+     * Returns the values of the compiled paths in declaration order. Missing fields, JSON nulls and
+     * non-scalar values are returned as {@code null}. Content after the last field found is not checked.
+     *
+     * @throws UncheckedIOException if the body is not valid JSON up to the last field found
+     */
+    public String[] read(byte[] body) {
+        return read(body, false);
+    }
+
+    /**
+     * Like {@link #read}, but the whole body must be valid JSON.
+     *
+     * @throws UncheckedIOException if the body is not valid JSON
+     */
+    public String[] readStrict(byte[] body) {
+        return read(body, true);
+    }
+
+    private String[] read(byte[] body, boolean strict) {
+        String[] values = new String[paths.length];
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            }
+            if (token == JsonToken.START_OBJECT) {
+                readObject(parser, new String[maxDepth()], 0, values, new boolean[paths.length], paths.length);
+            }
+            if (strict) {
+                while (parser.nextToken() != null) {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Body is not valid JSON", e);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the value of the first compiled path.
+     */
+    public String readFirst(byte[] body) {
+        return read(body)[0];
+    }
+
+    public int size() {
+        return paths.length;
+    }
+
+    public String path(int index) {
+        return String.join(".", paths[index]);
+    }
+
+    private int readObject(JsonParser parser, String[] fieldStack, int depth, String[] values, boolean[] found,
+                           int remaining) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            fieldStack[depth] = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                if (depth + 1 < fieldStack.length && isPrefixOfPendingPath(fieldStack, depth + 1, found)) {
+                    remaining = readObject(parser, fieldStack, depth + 1, values, found, remaining);
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            } else {
+                remaining -= matchScalar(parser, fieldStack, depth + 1, values, found);
+            }
+            if (remaining == 0) {
+                return 0;
+            }
+        }
+        return remaining;
+    }
+
+    private int matchScalar(JsonParser parser, String[] fieldStack, int length, String[] values, boolean[] found)
+            throws IOException {
+        int matched = 0;
+        for (int i = 0; i < paths.length; i++) {
+            if (!found[i] && paths[i].length == length && startsWith(paths[i], fieldStack, length)) {
+                values[i] = parser.getValueAsString();
+                found[i] = true;
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private boolean isPrefixOfPendingPath(String[] fieldStack, int length, boolean[] found) {
+        for (int i = 0; i < paths.length; i++) {
+            if (!found[i] && paths[i].length > length && startsWith(paths[i], fieldStack, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(String[] path, String[] fieldStack, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!path[i].equals(fieldStack[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int maxDepth() {
+        int max = 0;
+        for (String[] path : paths) {
+            max = Math.max(max, path.length);
+        }
+        return max;
+    }
+}
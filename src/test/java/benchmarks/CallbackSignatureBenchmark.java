@@ -0,0 +1,66 @@
+package benchmarks;
+
+import mappings.CallbackSignature;
+import mappings.PayoutStubs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of callback signature verification on 1..N threads, to check that HMAC stays far below
+ * the callback rates the mock is driven at. Not part of the test suite, run it with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=benchmarks.CallbackSignatureBenchmark -Dexec.classpathScope=test}.
+ */
+public class CallbackSignatureBenchmark {
+
+    private static final long WARM_UP_MILLIS = 2_000;
+    private static final long MEASURE_MILLIS = 3_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        CallbackSignature signature = new CallbackSignature(CallbackSignature.DEFAULT_SECRET);
+        byte[] body = PayoutStubs.callbackBody("17:33").getBytes(StandardCharsets.UTF_8);
+        String header = signature.sign(body);
+
+        run(signature, body, header, 1, WARM_UP_MILLIS);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long operations = run(signature, body, header, threads, MEASURE_MILLIS);
+            System.out.println(String.format("%d thread(s): %,d verifications/s, %.2f us/op per thread, body %d bytes",
+                    threads, operations * 1000 / MEASURE_MILLIS,
+                    threads * MEASURE_MILLIS * 1000.0 / operations, body.length));
+        }
+    }
+
+    private static long run(CallbackSignature signature, byte[] body, String header, int threads, long millis)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    long count = 0;
+                    while (System.nanoTime() < deadline) {
+                        if (!signature.verify(body, header)) {
+                            throw new IllegalStateException("Signature did not verify");
+                        }
+                        count++;
+                    }
+                    operations.add(count);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return operations.sum();
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import mappings.CallbackSignature;
+import mappings.MockServer;
+import mappings.PayoutStubs;
+import mappings.ShardRouter;
+import mappings.ShardedMockServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+
+/**
+ * Status request throughput of 1, 2, 4.. in-process shards, through the front-end and with the client routing
+ * to the shards itself. Shards keep WireMock's small default pool, so on a multi-core machine a single shard is
+ * pool-bound and throughput should grow with the shard count until the CPUs are busy. Not part of the test suite,
+ * run it with {@code mvn test-compile exec:java -Dexec.mainClass=benchmarks.ShardedMockBenchmark
+ * -Dexec.classpathScope=test -Dexec.args="4 64"} for up to 4 shards and 64 client threads.
+ */
+public class ShardedMockBenchmark {
+
+    private static final long WARM_UP_MILLIS = 3_000;
+    private static final long MEASURE_MILLIS = 5_000;
+    private static final String PAYOUT_PREFIX = PayoutStubs.PAYOUTS_PATH + "/bench-";
+
+    public static void main(String[] args) throws Exception {
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        System.out.println(String.format("%d client threads, %d CPU(s)", clients, Runtime.getRuntime().availableProcessors()));
+        // An untimed round first, so the request path is compiled before the 1-shard case is measured
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            measure(shards, clients, false);
+        }
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            measure(shards, clients, true);
+        }
+        System.exit(0);
+    }
+
+    private static void measure(int shards, int clients, boolean print) throws InterruptedException {
+        ShardedMockServer server = new ShardedMockServer(0, shards, 0, 0, null, CallbackSignature.DEFAULT_SECRET, null,
+                ShardedMockServer.DEFAULT_FRONT_END_THREADS);
+        server.start();
+        try {
+            for (MockServer shard : server.shards()) {
+                shard.server().stubFor(get(urlPathMatching(PAYOUT_PREFIX + ".*"))
+                        .willReturn(okJson("{\"payoutId\": \"bench\", \"status\": \"COMPLETED\"}")));
+            }
+            ShardRouter frontEnd = new ShardRouter(Collections.singletonList(server.baseUrl()));
+            long millis = print ? MEASURE_MILLIS : WARM_UP_MILLIS;
+            long throughFrontEnd = run(frontEnd, clients, millis);
+            long clientRouted = run(server.router(), clients, millis);
+            if (print) {
+                System.out.println(String.format("%d shard(s): %,d requests/s through the front-end, %,d requests/s client-routed",
+                        shards, throughFrontEnd * 1000 / millis, clientRouted * 1000 / millis));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static long run(ShardRouter router, int clients, long millis) throws InterruptedException {
+        LongAdder requests = new LongAdder();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(clients);
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        for (int i = 0; i < clients; i++) {
+            new Thread(() -> {
+                try {
+                    long count = 0;
+                    while (System.nanoTime() < deadline) {
+                        String url = PAYOUT_PREFIX + ThreadLocalRandom.current().nextInt(1_000_000);
+                        request(router.shardUrlFor(url, null) + url);
+                        count++;
+                    }
+                    requests.add(count);
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new IllegalStateException("Request failed", failure.get());
+        }
+        return requests.sum();
+    }
+
+    private static void request(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (connection.getResponseCode() != 200) {
+            throw new IOException(url + ": " + connection.getResponseCode());
+        }
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[512];
+            while (in.read(buffer) >= 0) {
+                // drain so the connection is kept alive
+            }
+        }
+    }
+}
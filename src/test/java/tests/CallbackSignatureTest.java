@@ -0,0 +1,51 @@
+package tests;
+
+import mappings.CallbackSignature;
+import mappings.PayoutStubs;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class CallbackSignatureTest {
+
+    private final CallbackSignature signature = new CallbackSignature(CallbackSignature.DEFAULT_SECRET);
+
+    private final byte[] body = PayoutStubs.callbackBody("17:33").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void verifySignedBody_expectVerified() {
+        String header = signature.sign(body);
+
+        Assert.assertTrue(signature.verify(body, header));
+        Assert.assertTrue(signature.verify(body, header.toUpperCase().replace("SHA256=", "sha256=")));
+    }
+
+    @Test
+    public void verifyNonAsciiHexDigits_expectRejected() {
+        String header = signature.sign(body);
+        StringBuilder fullwidth = new StringBuilder(header);
+        for (int i = "sha256=".length(); i < fullwidth.length(); i++) {
+            char c = fullwidth.charAt(i);
+            if (c >= '0' && c <= '9') {
+                fullwidth.setCharAt(i, (char) ('\uFF10' + (c - '0')));
+            }
+        }
+
+        Assert.assertFalse(signature.verify(body, fullwidth.toString()));
+    }
+
+    @Test
+    public void verifyByteBuffer_expectVerifiedAndPositionUnchanged() {
+        String header = signature.sign(body);
+        ByteBuffer buffer = ByteBuffer.allocate(body.length + 8);
+        buffer.put(new byte[4]).put(body).put(new byte[4]);
+        buffer.position(4).limit(4 + body.length);
+
+        Assert.assertTrue(signature.verify(buffer, header));
+        Assert.assertEquals(4, buffer.position());
+        Assert.assertTrue(signature.verify(buffer, header));
+        Assert.assertFalse(signature.verify(ByteBuffer.wrap(body, 0, body.length - 1), header));
+    }
+}
@@ -0,0 +1,65 @@
+package tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import util.JsonFieldReader;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+public class JsonFieldReaderTest {
+
+    @Test
+    public void readNestedPath_expectValue() {
+        JsonFieldReader reader = JsonFieldReader.compile("recipient.address.value", "status");
+
+        String[] values = reader.read(bytes("{\"recipient\": {\"type\": \"MSISDN\", \"address\": {\"value\": \"260763456789\"}},"
+                + " \"status\": \"ACCEPTED\"}"));
+
+        Assert.assertArrayEquals(new String[]{"260763456789", "ACCEPTED"}, values);
+    }
+
+    @Test
+    public void readAfterIrrelevantObjects_expectValueOutsideThem() {
+        JsonFieldReader reader = JsonFieldReader.compile("status");
+
+        String[] values = reader.read(bytes("{\"metadata\": [{\"status\": \"IGNORED\"}],"
+                + " \"failureReason\": {\"status\": \"IGNORED\", \"nested\": {\"status\": \"IGNORED\"}},"
+                + " \"status\": \"FAILED\"}"));
+
+        Assert.assertArrayEquals(new String[]{"FAILED"}, values);
+    }
+
+    @Test
+    public void readMissingField_expectNull() {
+        JsonFieldReader reader = JsonFieldReader.compile("status", "rejectionReason.rejectionCode");
+
+        String[] values = reader.read(bytes("{\"status\": \"ACCEPTED\", \"rejectionReason\": {}}"));
+
+        Assert.assertArrayEquals(new String[]{"ACCEPTED", null}, values);
+    }
+
+    @Test
+    public void readArrayRoot_expectFirstElement() {
+        JsonFieldReader reader = JsonFieldReader.compile("payoutId", "status");
+
+        String[] values = reader.read(bytes("[{\"payoutId\": \"3\", \"status\": \"CANCELLED\"},"
+                + " {\"payoutId\": \"4\", \"status\": \"FAILED\"}]"));
+
+        Assert.assertArrayEquals(new String[]{"3", "CANCELLED"}, values);
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void readInvalidJson_expectUncheckedIOException() {
+        JsonFieldReader.compile("status").read(bytes("{\"payoutId\": \"1\" \"status\": \"ACCEPTED\"}"));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void readStrictInvalidJsonAfterField_expectUncheckedIOException() {
+        JsonFieldReader.compile("status").readStrict(bytes("{\"status\": \"ACCEPTED\", \"created\": }"));
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,13 +1,23 @@
 package tests;
 
+import com.github.tomakehurst.wiremock.WireMockServer;
 import config.Log4jTestWatcher;
 import org.apache.log4j.Logger;
 import org.junit.*;
 import org.junit.rules.TestWatcher;
 import org.junit.runners.MethodSorters;
+import mappings.CallbackSignature;
+import mappings.MockServer;
 import mappings.MockService;
+import mappings.PayoutMetrics;
+import mappings.PayoutStubs;
+import mappings.ShardedMockServer;
+import util.JsonAssert;
 
+import java.net.ServerSocket;
+import java.util.Collections;
 import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 
@@ -50,63 +60,58 @@ public class PayoutTests extends MockService {
 
     @Test
     public void createRequest_checkRequestResponseStatus_expectAccepted() {
-        String status = given().
+        byte[] body = given().
                 body(payoutRequestCreationAcceptedFinalCompleted).
                 when().
                 post("/pawaPayBusiness/v1/payouts").
-                jsonPath().
-                get("status");
+                asByteArray();
 
-        Assert.assertEquals("ACCEPTED", status);
+        JsonAssert.assertFields(statusField, body, "ACCEPTED");
     }
 
     @Test
     public void createRequest_checkRequestResponseStatus_expectRejected() {
-        String status = given().
+        byte[] body = given().
                 body(payoutRequestCreationRejected).
                 when().
                 post("/pawaPayBusiness/v1/payouts").
-                jsonPath().
-                get("status");
+                asByteArray();
 
-        Assert.assertEquals("REJECTED", status);
+        JsonAssert.assertFields(statusField, body, "REJECTED");
     }
 
     @Test
     public void createRequest_checkRequestResponseReason_expectRejectionReason() {
-        String rejectionReason = given().
+        byte[] body = given().
                 body(payoutRequestCreationRejected).
                 when().
                 post("/pawaPayBusiness/v1/payouts").
-                jsonPath().
-                get("rejectionReason.rejectionReason");
+                asByteArray();
 
-        Assert.assertEquals("PAYOUTS_NOT_ALLOWED", rejectionReason);
+        JsonAssert.assertFields(rejectionReasonField, body, "PAYOUTS_NOT_ALLOWED");
     }
 
     @Test
     public void createRequest_checkRequestResponseStatus_expectDuplicateIgnored() {
         payoutRequestCreationDuplicateIgnored.setPayoutId("3");
-        String status = given().
+        byte[] body = given().
                 body(payoutRequestCreationDuplicateIgnored).
                 when().
                 post("/pawaPayBusiness/v1/payouts").
-                jsonPath().
-                get("status");
+                asByteArray();
 
-        Assert.assertEquals("DUPLICATE_IGNORED", status);
+        JsonAssert.assertFields(statusField, body, "DUPLICATE_IGNORED");
     }
 
     @Test
     public void createRequest_checkRequestResponse_expectUnknownInternalError() {
-        String internalError = given().
+        byte[] body = given().
                 body(payoutRequestCreationUnknownError).
                 when().
                 post("/pawaPayBusiness/v1/payouts").
-                jsonPath().
-                get("errorMessage");
+                asByteArray();
 
-        Assert.assertEquals("Unknown Internal Error", internalError);
+        JsonAssert.assertFields(errorMessageField, body, "Unknown Internal Error");
     }
 
 
@@ -123,10 +128,64 @@ public class PayoutTests extends MockService {
 
         targetServer.verify(1, postRequestedFor(urlEqualTo("/callback"))
                 .withHeader("Content-Type", equalTo("application/json"))
+                .withHeader(CallbackSignature.HEADER, matching("sha256=[0-9a-f]{64}"))
         );
 
     }
 
+    @Test
+    public void createRequest_payoutID2_checkCallbackSignature_expectVerified() throws Exception {
+
+        given().
+                body(payoutRequestCreationAcceptedFinalCompleted).
+                when().
+                post("/pawaPayBusiness/v1/payouts");
+        latch.await(2, SECONDS);
+
+        Assert.assertEquals(1, targetServer.getAllServeEvents().size());
+        Assert.assertEquals(200, targetServer.getAllServeEvents().get(0).getResponse().getStatus());
+    }
+
+    @Test
+    public void callback_signedBody_expect200() {
+        String body = PayoutStubs.callbackBody("17:33");
+        given().
+                port(targetServer.port()).
+                header(CallbackSignature.HEADER, callbackSignature.sign(body)).
+                body(body).
+                when().
+                post("/callback").
+                then().
+                assertThat().
+                statusCode(200);
+    }
+
+    @Test
+    public void callback_tamperedBody_expect401() {
+        String body = PayoutStubs.callbackBody("17:33");
+        given().
+                port(targetServer.port()).
+                header(CallbackSignature.HEADER, callbackSignature.sign(body)).
+                body(body.replace("15.21", "99.99")).
+                when().
+                post("/callback").
+                then().
+                assertThat().
+                statusCode(401);
+    }
+
+    @Test
+    public void callback_unsignedBody_expect401() {
+        given().
+                port(targetServer.port()).
+                body(PayoutStubs.callbackBody("17:33")).
+                when().
+                post("/callback").
+                then().
+                assertThat().
+                statusCode(401);
+    }
+
     @Test
     public void createRequest_payoutID2_checkCallbackRequestBody_expectRequestBody() throws Exception {
 
@@ -338,69 +397,316 @@ public class PayoutTests extends MockService {
 
     @Test
     public void requestTransactionProcessingResponse_checkResponseStatus_expectCompleted() {
-        String status = given().
+        byte[] body = given().
                 when().
                 get("/pawaPayBusiness/v1/payouts/2").
-                jsonPath().
-                get("status");
+                asByteArray();
 
-        Assert.assertEquals("COMPLETED", status);
+        JsonAssert.assertFields(statusField, body, "COMPLETED");
     }
 
     @Test
     public void requestTransactionProcessingResponse_checkResponseStatus_expectCancelled() {
-        String status = given().
+        byte[] body = given().
                 when().
                 get("/pawaPayBusiness/v1/payouts/5").
-                jsonPath().
-                get("[0].status");
+                asByteArray();
 
-        Assert.assertEquals("CANCELLED", status);
+        JsonAssert.assertFields(statusField, body, "CANCELLED");
     }
 
     @Test
     public void requestTransactionProcessingResponse_checkResponseStatus_expectFailed() {
-        String status = given().
+        byte[] body = given().
                 when().
                 get("/pawaPayBusiness/v1/payouts/6").
-                jsonPath().
-                get("[0].status");
+                asByteArray();
 
-        Assert.assertEquals("FAILED", status);
+        JsonAssert.assertFields(statusField, body, "FAILED");
     }
 
     @Test
     public void requestTransactionProcessingResponse_checkResponseStatus_expectPending() {
-        String status = given().
+        byte[] body = given().
                 when().
                 get("/pawaPayBusiness/v1/payouts/7").
-                jsonPath().
-                get("status");
+                asByteArray();
 
-        Assert.assertEquals("PENDING", status);
+        JsonAssert.assertFields(statusField, body, "PENDING");
     }
 
     @Test
     public void requestTransactionProcessingResponse_checkResponseStatus_expectSubmitted() {
-        String status = given().
+        byte[] body = given().
                 when().
                 get("/pawaPayBusiness/v1/payouts/8").
-                jsonPath().
-                get("status");
+                asByteArray();
 
-        Assert.assertEquals("SUBMITTED", status);
+        JsonAssert.assertFields(statusField, body, "SUBMITTED");
     }
 
     @Test
     public void requestTransactionProcessingResponse_checkResponse_expectUnknownError() {
-        String errorMessage = given().
+        byte[] body = given().
                 when().
                 get("/pawaPayBusiness/v1/payouts/9").
-                jsonPath().
-                get("errorMessage");
+                asByteArray();
+
+        JsonAssert.assertFields(errorMessageField, body, "Unknown Internal Error");
+    }
+
+    @Test
+    public void createRequest_checkRequestResponseSchema_expectCreationFields() {
+        byte[] body = given().
+                body(payoutRequestCreationAcceptedFinalCompleted).
+                when().
+                post("/pawaPayBusiness/v1/payouts").
+                asByteArray();
 
-        Assert.assertEquals("Unknown Internal Error", errorMessage);
+        JsonAssert.assertHasFields(payoutCreationSchema, body);
     }
 
+    @Test
+    public void requestTransactionProcessingResponse_checkResponseSchema_expectPayoutFields() {
+        byte[] body = given().
+                when().
+                get("/pawaPayBusiness/v1/payouts/2").
+                asByteArray();
 
-}
\ No newline at end of file
+        JsonAssert.assertHasFields(payoutSchema, body);
+    }
+
+    @Test
+    public void requestTransactionProcessingResponse_checkArrayResponseSchema_expectPayoutFields() {
+        byte[] body = given().
+                when().
+                get("/pawaPayBusiness/v1/payouts/6").
+                asByteArray();
+
+        JsonAssert.assertHasFields(payoutSchema, body);
+    }
+
+    @Test
+    public void requestTransactionProcessingResponse_checkResponseSchema_expectErrorFields() {
+        byte[] body = given().
+                when().
+                get("/pawaPayBusiness/v1/payouts/9").
+                asByteArray();
+
+        JsonAssert.assertHasFields(errorSchema, body);
+    }
+
+    @Test
+    public void shardedMock_createAndRequestPayout_expectSameShard() {
+        ShardedMockServer shardedServer = new ShardedMockServer(0, 3, 0, 0, null, CallbackSignature.DEFAULT_SECRET, null,
+                ShardedMockServer.DEFAULT_FRONT_END_THREADS);
+        shardedServer.start();
+        try {
+            int port = shardedServer.port();
+            byte[] creation = given().
+                    port(port).
+                    body(payoutRequestCreationAcceptedFinalCompleted).
+                    when().
+                    post("/pawaPayBusiness/v1/payouts").
+                    asByteArray();
+            byte[] payout = given().
+                    port(port).
+                    when().
+                    get("/pawaPayBusiness/v1/payouts/2").
+                    asByteArray();
+
+            JsonAssert.assertFields(statusField, creation, "ACCEPTED");
+            JsonAssert.assertFields(statusField, payout, "COMPLETED");
+            WireMockServer owner = shardedServer.shardFor("2").server();
+            owner.verify(1, postRequestedFor(urlEqualTo("/pawaPayBusiness/v1/payouts")));
+            owner.verify(1, getRequestedFor(urlEqualTo("/pawaPayBusiness/v1/payouts/2")));
+        } finally {
+            shardedServer.stop();
+        }
+    }
+
+    @Test
+    public void shardedMock_requestPayouts_expectEachOnOwningShard() {
+        ShardedMockServer shardedServer = new ShardedMockServer(0, 3, 0, 0, null, CallbackSignature.DEFAULT_SECRET, null,
+                ShardedMockServer.DEFAULT_FRONT_END_THREADS);
+        shardedServer.start();
+        try {
+            String[] payoutIds = {"2", "5", "6", "7", "8", "9"};
+            for (String payoutId : payoutIds) {
+                given().
+                        port(shardedServer.port()).
+                        when().
+                        get("/pawaPayBusiness/v1/payouts/" + payoutId).
+                        then().
+                        assertThat().
+                        statusCode(200);
+            }
+
+            int served = 0;
+            for (MockServer shard : shardedServer.shards()) {
+                served += shard.server().getAllServeEvents().size();
+            }
+            Assert.assertEquals(payoutIds.length, served);
+            for (String payoutId : payoutIds) {
+                shardedServer.shardFor(payoutId).server()
+                        .verify(1, getRequestedFor(urlEqualTo("/pawaPayBusiness/v1/payouts/" + payoutId)));
+            }
+        } finally {
+            shardedServer.stop();
+        }
+    }
+
+    @Test
+    public void shardedMock_frontEndOverShardUrls_expectRoutedToUrl() {
+        ShardedMockServer shardedServer = new ShardedMockServer(0, Collections.singletonList(rule.baseUrl()),
+                ShardedMockServer.DEFAULT_FRONT_END_THREADS);
+        shardedServer.start();
+        try {
+            byte[] payout = given().
+                    port(shardedServer.port()).
+                    when().
+                    get("/pawaPayBusiness/v1/payouts/5").
+                    asByteArray();
+
+            JsonAssert.assertFields(statusField, payout, "CANCELLED");
+            Assert.assertEquals(rule.baseUrl(), shardedServer.shardUrlFor("5"));
+            rule.verify(1, getRequestedFor(urlEqualTo("/pawaPayBusiness/v1/payouts/5")));
+        } finally {
+            shardedServer.stop();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shardedMock_shardForOverShardUrls_expectIllegalStateException() {
+        ShardedMockServer shardedServer = new ShardedMockServer(0, Collections.singletonList(rule.baseUrl()),
+                ShardedMockServer.DEFAULT_FRONT_END_THREADS);
+        shardedServer.start();
+        try {
+            shardedServer.shardFor("5");
+        } finally {
+            shardedServer.stop();
+        }
+    }
+
+    @Test
+    public void shardedMock_frontEndPortTaken_expectShardsStopped() throws Exception {
+        try (ServerSocket taken = new ServerSocket(0)) {
+            ShardedMockServer shardedServer = new ShardedMockServer(taken.getLocalPort(), 2, 0, 0, null,
+                    CallbackSignature.DEFAULT_SECRET, null, ShardedMockServer.DEFAULT_FRONT_END_THREADS);
+            try {
+                shardedServer.start();
+                Assert.fail("Front-end started on a port in use");
+            } catch (IllegalStateException expected) {
+                Assert.assertEquals(2, shardedServer.shards().size());
+                for (MockServer shard : shardedServer.shards()) {
+                    Assert.assertFalse(shard.server().isRunning());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void metrics_createRequests_expectCountersPerStatusAndCorrespondent() throws Exception {
+        given().
+                body(payoutRequestCreationAcceptedFinalCompleted).
+                when().
+                post("/pawaPayBusiness/v1/payouts");
+        given().
+                body(payoutRequestCreationRejected).
+                when().
+                post("/pawaPayBusiness/v1/payouts");
+        given().
+                body(payoutRequestCreationUnknownError).
+                when().
+                post("/pawaPayBusiness/v1/payouts");
+        latch.await(2, SECONDS);
+
+        Assert.assertEquals(3, metrics.requests(PayoutMetrics.Endpoint.CREATE_PAYOUT));
+        Assert.assertEquals(3, metrics.latency(PayoutMetrics.Endpoint.CREATE_PAYOUT).count());
+        Assert.assertEquals(1, metrics.responses("ACCEPTED"));
+        Assert.assertEquals(1, metrics.responses("REJECTED"));
+        Assert.assertEquals(1, metrics.responses(PayoutMetrics.ERROR));
+        Assert.assertEquals(2, metrics.correspondentRequests("MTN_MOMO_ZMB"));
+        Assert.assertEquals(1, metrics.correspondentRequests("MTN_MOMO_ZMM"));
+        Assert.assertEquals(1, metrics.webhookDeliveries(200));
+        Assert.assertEquals(0, metrics.webhookFailures());
+        Assert.assertEquals(1, metrics.webhookLatency().count());
+        Assert.assertEquals(1, metrics.callbacksReceived(200));
+    }
+
+    @Test
+    public void metrics_callbackReceiverDown_expectWebhookFailureCounted() throws Exception {
+        MockServer mockServer = new MockServer(0, 0, "http://localhost:1" + PayoutStubs.CALLBACK_PATH,
+                CallbackSignature.DEFAULT_SECRET, null);
+        mockServer.start();
+        try {
+            given().
+                    port(mockServer.server().port()).
+                    body(payoutRequestCreationAcceptedFinalCompleted).
+                    when().
+                    post("/pawaPayBusiness/v1/payouts").
+                    then().
+                    assertThat().
+                    statusCode(200);
+            latch.await(2, SECONDS);
+
+            Assert.assertEquals(1, mockServer.metrics().webhookFailures());
+            Assert.assertEquals(0, mockServer.metrics().webhookDeliveries(200));
+            Assert.assertEquals(1, mockServer.metrics().webhookLatency().count());
+        } finally {
+            mockServer.stop();
+        }
+    }
+
+    @Test
+    public void metrics_manyCorrespondents_expectExtraFoldedIntoOther() throws Exception {
+        int correspondents = PayoutMetrics.MAX_CORRESPONDENTS + 5;
+        for (int i = 0; i < correspondents; i++) {
+            given().
+                    body("{\"payoutId\": \"1\", \"correspondent\": \"CORRESPONDENT_" + i + "\"}").
+                    when().
+                    post("/pawaPayBusiness/v1/payouts");
+        }
+        awaitCounted(() -> metrics.correspondentRequests(PayoutMetrics.OTHER_CORRESPONDENT) == 5);
+
+        Assert.assertEquals(1, metrics.correspondentRequests("CORRESPONDENT_0"));
+        Assert.assertEquals(0, metrics.correspondentRequests("CORRESPONDENT_" + (correspondents - 1)));
+        Assert.assertEquals(5, metrics.correspondentRequests(PayoutMetrics.OTHER_CORRESPONDENT));
+    }
+
+    @Test
+    public void metrics_requestAdminEndpoint_expectPrometheusText() throws Exception {
+        given().
+                when().
+                get("/pawaPayBusiness/v1/payouts/5");
+        awaitCounted(() -> metrics.requests(PayoutMetrics.Endpoint.GET_PAYOUT) == 1
+                && metrics.latency(PayoutMetrics.Endpoint.GET_PAYOUT).count() == 1);
+
+        String metricsText = given().
+                when().
+                get("/__admin/metrics").
+                then().
+                assertThat().
+                statusCode(200).
+                extract().
+                asString();
+
+        Assert.assertTrue(metricsText.contains("payout_mock_requests_total{endpoint=\"get_payout\"} 1\n"));
+        Assert.assertTrue(metricsText.contains("payout_mock_responses_total{status=\"CANCELLED\"} 1\n"));
+        Assert.assertTrue(metricsText.contains("payout_mock_request_duration_seconds_count{endpoint=\"get_payout\"} 1\n"));
+        Assert.assertTrue(metricsText.contains("payout_mock_request_duration_seconds_bucket{endpoint=\"get_payout\",le=\"+Inf\"} 1\n"));
+        Assert.assertTrue(metricsText.contains("payout_mock_request_duration_seconds_bucket{endpoint=\"get_payout\",le=\"0.0001\"} "));
+        Assert.assertTrue(metrics.latency(PayoutMetrics.Endpoint.GET_PAYOUT).sumNanos() > 0);
+    }
+
+    /**
+     * Metrics are recorded once the response has been sent, so the client can see the response of the last
+     * request a moment before it is counted.
+     */
+    private static void awaitCounted(BooleanSupplier counted) throws InterruptedException {
+        long deadline = System.nanoTime() + SECONDS.toNanos(2);
+        while (!counted.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package util;
+
+import org.junit.Assert;
+
+/**
+ * Assertions over response bodies backed by a {@link JsonFieldReader}, so a check costs one streaming
+ * pass over the bytes instead of a full jsonPath tree. Like {@code jsonPath()}, they fail on invalid JSON.
+ */
+public class JsonAssert {
+
+    private JsonAssert() {
+    }
+
+    public static void assertFields(JsonFieldReader reader, byte[] body, String... expected) {
+        Assert.assertEquals("Expected values must match the compiled paths", expected.length, reader.size());
+        String[] actual = reader.readStrict(body);
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(reader.path(i), expected[i], actual[i]);
+        }
+    }
+
+    public static void assertHasFields(JsonFieldReader schema, byte[] body) {
+        String[] actual = schema.readStrict(body);
+        for (int i = 0; i < actual.length; i++) {
+            Assert.assertNotNull(String.format("Missing field: %s", schema.path(i)), actual[i]);
+        }
+    }
+}
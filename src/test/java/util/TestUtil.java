@@ -27,4 +27,13 @@ public class TestUtil {
             "Payout #123", LocalDateTime.of(2000, Month.MARCH, 9, 17, 59));
     public static  Payout payoutUnknownError = new Payout("9", "15.21", "ZMW", financialAddress, "MTN_MOMO_ZMB", "ZMB",
             "Payout #123", LocalDateTime.of(2000, Month.MARCH, 9, 18, 00));
+
+    public static final JsonFieldReader statusField = JsonFieldReader.compile("status");
+    public static final JsonFieldReader rejectionReasonField = JsonFieldReader.compile("rejectionReason.rejectionReason");
+    public static final JsonFieldReader errorMessageField = JsonFieldReader.compile("errorMessage");
+
+    public static final JsonFieldReader payoutCreationSchema = JsonFieldReader.compile("created", "status");
+    public static final JsonFieldReader payoutSchema = JsonFieldReader.compile("created", "amount", "currency",
+            "recipient.type", "correspondent", "country", "payoutId", "status");
+    public static final JsonFieldReader errorSchema = JsonFieldReader.compile("errorId", "errorCode", "errorMessage");
 }